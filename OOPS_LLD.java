@@ -821,3 +821,2377 @@ public class Main {
         weight.check("Explosives");
     }
 }
+
+Sharded Payment Ledger :
+The Concept :
+// Our PaymentSystem, CardPayment and UPIPayment only print "Paying amount". Nobody keeps a balance,
+// so two debits from the same payer arriving at the same time can both pass and overdraw the account.
+
+// The usual fix is a lock per account. Locks work, but under load every thread spends its time waiting.
+
+// The Sharded way: split the accounts into "Shards" using the account's hash.
+// Each Shard is owned by exactly ONE thread (a single-threaded executor).
+// Every debit/credit for an account goes into its Shard's queue, so they run one after another, in order,
+// without any locks. Different Shards run on different cores at the same time.
+
+// Transfers between two Shards use Two Phases:
+// Phase 1 (Reserve): The payer's Shard puts the money "on hold". If there isn't enough, stop here.
+// Phase 2 (Commit):  The payee's Shard adds the money, then the payer's Shard removes the hold.
+// If Phase 2 fails, the payer's Shard releases the hold and the money goes back.
+
+/*
+The Bad Code :
+class PaymentSystem {
+    double balance = 500.0;
+
+    void pay(double amount) {
+        if (balance >= amount) {      // Thread A checks: 500 >= 400, OK
+            balance = balance - amount; // Thread B checked at the same time: also OK
+        }                              // Result: -300. Money created out of thin air!
+    }
+}
+*/
+
+// The Good Code :
+// 1. THE SHARD (One thread, one queue, its own accounts)
+// Only this Shard's thread ever touches these maps, so plain HashMaps are safe.
+class LedgerShard {
+    ExecutorService worker = Executors.newSingleThreadExecutor();
+    Map<String, Long> balances = new HashMap<>(); // In paise/cents, never use double for money
+    Map<String, Long> holds = new HashMap<>();
+
+    CompletableFuture<Boolean> submit(Supplier<Boolean> task) {
+        return CompletableFuture.supplyAsync(task, worker);
+    }
+
+    // These run ONLY on the Shard's own thread
+    void deposit(String account, long amount) {
+        balances.merge(account, amount, Long::sum);
+    }
+
+    boolean reserve(String account, long amount) {
+        long available = balances.getOrDefault(account, 0L);
+        if (available < amount) {
+            return false; // Not enough money, nothing changes
+        }
+        balances.put(account, available - amount);
+        holds.merge(account, amount, Long::sum);
+        return true;
+    }
+
+    void commitHold(String account, long amount) {
+        holds.merge(account, -amount, Long::sum);
+    }
+
+    void releaseHold(String account, long amount) {
+        holds.merge(account, -amount, Long::sum);
+        balances.merge(account, amount, Long::sum);
+    }
+}
+
+// 2. THE LEDGER (The "Post Office" that knows which Shard owns which account)
+class ShardedLedger {
+    LedgerShard[] shards;
+    boolean sameShardShortcut = true; // Benchmarks turn this off so every run uses the same Two-Phase protocol
+    AtomicLong inFlight = new AtomicLong(); // Transfers started but not yet settled
+    volatile boolean closing = false;
+
+    ShardedLedger(int shardCount) {
+        shards = new LedgerShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LedgerShard();
+        }
+    }
+
+    LedgerShard shardFor(String account) {
+        return shards[Math.floorMod(account.hashCode(), shards.length)];
+    }
+
+    CompletableFuture<Boolean> deposit(String account, long amount) {
+        LedgerShard shard = shardFor(account);
+        return shard.submit(() -> {
+            shard.deposit(account, amount);
+            return true;
+        });
+    }
+
+    CompletableFuture<Long> balance(String account) {
+        LedgerShard shard = shardFor(account);
+        return CompletableFuture.supplyAsync(() -> shard.balances.getOrDefault(account, 0L), shard.worker);
+    }
+
+    // The Two-Phase Transfer
+    CompletableFuture<Boolean> transfer(String from, String to, long amount) {
+        if (amount <= 0) {
+            return CompletableFuture.completedFuture(false); // A negative "payment" would pull money from the payee
+        }
+        // Count ourselves in BEFORE checking closing, so shutdown() either sees us or we see it
+        inFlight.incrementAndGet();
+        if (closing) {
+            inFlight.decrementAndGet();
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Boolean> result;
+        try {
+            result = twoPhase(from, to, amount);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((done, error) -> inFlight.decrementAndGet());
+    }
+
+    CompletableFuture<Boolean> twoPhase(String from, String to, long amount) {
+        LedgerShard source = shardFor(from);
+        LedgerShard target = shardFor(to);
+
+        // Same Shard: one task does everything, it is already in order
+        if (source == target && sameShardShortcut) {
+            return source.submit(() -> {
+                if (!source.reserve(from, amount)) {
+                    return false;
+                }
+                source.deposit(to, amount);
+                source.commitHold(from, amount);
+                return true;
+            });
+        }
+
+        // Phase 1: Reserve on the payer's Shard
+        return source.submit(() -> source.reserve(from, amount))
+            .thenCompose(reserved -> {
+                if (!reserved) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                // Phase 2: Credit on the payee's Shard, then settle the hold back on the payer's Shard
+                return credit(target, to, amount)
+                    .exceptionally(error -> false)
+                    .thenCompose(credited -> source.submit(() -> {
+                        if (credited) {
+                            source.commitHold(from, amount);
+                        } else {
+                            source.releaseHold(from, amount); // Undo Phase 1
+                        }
+                        return credited;
+                    }));
+            });
+    }
+
+    // Even if the payee's Shard refuses the task outright (e.g. it was shut down), we get a failed future back,
+    // never an exception thrown past us, so Phase 2 always gets the chance to release the hold
+    CompletableFuture<Boolean> credit(LedgerShard target, String to, long amount) {
+        try {
+            return target.submit(() -> {
+                target.deposit(to, amount);
+                return true;
+            });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Stop taking new transfers, let every started one settle its hold, and only then stop the Shards.
+    // Otherwise the settle step of a transfer could be refused and its hold would stay stuck forever.
+    void shutdown() {
+        closing = true;
+        while (inFlight.get() > 0) {
+            Thread.onSpinWait();
+        }
+        for (LedgerShard shard : shards) {
+            shard.worker.shutdown();
+        }
+    }
+}
+
+// 3. PLUGGING IT INTO THE PROCESSOR (Open-Closed: PaymentProcessor does not change!)
+interface PaymentMethod {
+    void pay();
+}
+
+class LedgerPayment implements PaymentMethod {
+    ShardedLedger ledger;
+    String payer;
+    String payee;
+    long amount;
+    boolean successful;
+
+    public void pay() {
+        successful = ledger.transfer(payer, payee, amount).join();
+        System.out.println("Ledger: " + payer + " -> " + payee + " " + amount + (successful ? " PAID" : " DECLINED"));
+    }
+}
+
+class PaymentProcessor {
+    void process(PaymentMethod method) {
+        method.pay(); // Same as before, the ledger is just another method
+    }
+}
+
+// 4. THE EXECUTION (With a small throughput benchmark from 1 to N Shards)
+public class Main {
+    public static void main(String[] args) throws InterruptedException {
+        ShardedLedger ledger = new ShardedLedger(4);
+        ledger.deposit("alice", 500).join();
+
+        LedgerPayment first = new LedgerPayment();
+        first.ledger = ledger;
+        first.payer = "alice";
+        first.payee = "bob";
+        first.amount = 400;
+
+        LedgerPayment second = new LedgerPayment();
+        second.ledger = ledger;
+        second.payer = "alice";
+        second.payee = "carol";
+        second.amount = 400;
+
+        PaymentProcessor processor = new PaymentProcessor();
+        processor.process(first);  // PAID
+        processor.process(second); // DECLINED, alice only has 100 left
+        ledger.shutdown();
+
+        // Benchmark: same number of transfers, 1, 2, 4 ... and finally exactly N Shards (N = cores)
+        int accounts = 10_000;
+        int transfers = 1_000_000;
+        int producers = 4;
+        String[] names = new String[accounts]; // Built once, so the producers don't spend the timed window making Strings
+        for (int i = 0; i < accounts; i++) {
+            names[i] = "acc-" + i;
+        }
+
+        int maxShards = Runtime.getRuntime().availableProcessors();
+        List<Integer> shardCounts = new ArrayList<>();
+        for (int shardCount = 1; shardCount < maxShards; shardCount *= 2) {
+            shardCounts.add(shardCount);
+        }
+        shardCounts.add(maxShards);
+
+        for (int shardCount : shardCounts) {
+            ShardedLedger bench = new ShardedLedger(shardCount);
+            bench.sameShardShortcut = false; // Compare sharding, not two different protocols
+            CompletableFuture<?>[] deposits = new CompletableFuture<?>[accounts];
+            for (int i = 0; i < accounts; i++) {
+                deposits[i] = bench.deposit(names[i], 1_000_000);
+            }
+            CompletableFuture.allOf(deposits).join(); // Every Shard is idle before the clock starts
+
+            CompletableFuture<?>[] pending = new CompletableFuture<?>[transfers];
+            Thread[] producerThreads = new Thread[producers];
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                int from = p * (transfers / producers);
+                int until = p == producers - 1 ? transfers : from + transfers / producers;
+                producerThreads[p] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = from; i < until; i++) {
+                        pending[i] = bench.transfer(names[random.nextInt(accounts)], names[random.nextInt(accounts)], 1);
+                    }
+                });
+                producerThreads[p].start();
+            }
+            for (Thread producer : producerThreads) {
+                producer.join();
+            }
+            CompletableFuture.allOf(pending).join();
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(shardCount + " shard(s): " + (transfers * 1_000_000_000L / elapsed) + " transfers/sec");
+            bench.shutdown();
+        }
+    }
+}
+// Why this helps: One account is only ever touched by one thread, so there is no lock and no race.
+// Adding Shards spreads different accounts over more cores, so throughput grows with the machine.
+
+Priority Scheduler for Shipment Updates :
+The Concept :
+// In the Observer Pattern, Shipment.updateStatus pokes every observer right away, in arrival order.
+// That means a "DELIVERED" for a premium AIR shipment waits behind thousands of routine OCEAN "IN-TRANSIT" pings.
+
+// The Scheduler sits between the Shipment and its observers and decides WHO gets delivered FIRST:
+// 1. Priority Classes: Each update is put into a class based on shipment mode and status (CRITICAL, STANDARD, BULK).
+// 2. Earliest Deadline First (EDF): Inside one class, the update whose deadline is closest goes first.
+// 3. Starvation Protection: Higher classes win most turns, but every class is guaranteed some turns,
+//    and a BULK update that has waited too long is promoted one class up (to STANDARD, never to CRITICAL).
+//    So a CRITICAL update waits for at most 3 STANDARD + 1 BULK deliveries, however big the flood is.
+// 4. Reporting: Per class we count how many are waiting (queue depth), how many were late (deadline misses),
+//    how many were promoted and how many observer calls failed.
+
+// 1. THE CLASSES (Lower number = more important)
+enum PriorityClass {
+    CRITICAL(200, 8),  // Deadline in ms, turns per round
+    STANDARD(2_000, 3),
+    BULK(30_000, 1);
+
+    long deadlineMillis;
+    int turnsPerRound;
+
+    PriorityClass(long deadlineMillis, int turnsPerRound) {
+        this.deadlineMillis = deadlineMillis;
+        this.turnsPerRound = turnsPerRound;
+    }
+
+    // The "Rule" that classifies an update: mode AND status together.
+    // Routine AIR pings are STANDARD, so a flood of them can't crowd out the AIR "DELIVERED" that matters.
+    static PriorityClass of(String mode, String status) {
+        if (status.equals("EXCEPTION")) {
+            return CRITICAL; // Something went wrong, whatever the mode
+        }
+        if (mode.equals("AIR") && status.equals("DELIVERED")) {
+            return CRITICAL;
+        }
+        if (mode.equals("OCEAN") && status.equals("IN-TRANSIT")) {
+            return BULK;
+        }
+        return STANDARD;
+    }
+}
+
+// 2. ONE PIECE OF WORK (An update waiting to be delivered)
+class StatusUpdate {
+    String status;
+    PriorityClass requested; // The class it was submitted with, used for reporting
+    PriorityClass priority;  // The class it is queued in now (may be higher after promotion)
+    long enqueuedAt;
+    long deadline;
+    long sortKey;            // What EDF sorts by: the deadline, or earlier once the update has been promoted
+    List<Observer> observers;
+}
+
+// 3. THE SCHEDULER
+class UpdateScheduler {
+    long maxWaitMillis = 5_000; // A BULK update older than this is promoted to STANDARD (no starvation)
+    int maxPromotionsPerPick = 64; // Keeps one call to next() short even when a huge backlog ages at once
+
+    Map<PriorityClass, PriorityQueue<StatusUpdate>> queues = new EnumMap<>(PriorityClass.class);
+    Map<PriorityClass, AtomicLong> misses = new EnumMap<>(PriorityClass.class);
+    Map<PriorityClass, AtomicLong> delivered = new EnumMap<>(PriorityClass.class);
+    Map<PriorityClass, AtomicLong> promoted = new EnumMap<>(PriorityClass.class);
+    Map<PriorityClass, AtomicLong> observerFailures = new EnumMap<>(PriorityClass.class);
+    Map<PriorityClass, Integer> turnsLeft = new EnumMap<>(PriorityClass.class);
+    Thread dispatcher;
+    volatile boolean running = true;
+
+    UpdateScheduler() {
+        for (PriorityClass pc : PriorityClass.values()) {
+            // EDF: the queue is sorted by deadline, closest first
+            queues.put(pc, new PriorityQueue<>(Comparator.comparingLong((StatusUpdate u) -> u.sortKey)));
+            misses.put(pc, new AtomicLong());
+            delivered.put(pc, new AtomicLong());
+            promoted.put(pc, new AtomicLong());
+            observerFailures.put(pc, new AtomicLong());
+            turnsLeft.put(pc, pc.turnsPerRound);
+        }
+        dispatcher = new Thread(this::runLoop, "shipment-update-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    synchronized void submit(String mode, String status, List<Observer> observers) {
+        StatusUpdate update = new StatusUpdate();
+        update.status = status;
+        update.requested = PriorityClass.of(mode, status);
+        update.priority = update.requested;
+        update.enqueuedAt = System.currentTimeMillis();
+        update.deadline = update.enqueuedAt + update.priority.deadlineMillis;
+        update.sortKey = update.deadline;
+        update.observers = new ArrayList<>(observers); // Copy so later subscribe/unsubscribe doesn't affect this update
+        queues.get(update.priority).add(update);
+        notifyAll();
+    }
+
+    // Picks the next update to deliver
+    synchronized StatusUpdate next() throws InterruptedException {
+        while (true) {
+            // Rule A: Aged BULK updates move up to STANDARD. They then compete for STANDARD's turns,
+            // so they get through sooner, but CRITICAL still wins 8 turns in every round.
+            promoteAged(System.currentTimeMillis());
+
+            // Rule B: Weighted round: CRITICAL gets 8 turns, STANDARD 3, BULK 1, then refill
+            for (PriorityClass pc : PriorityClass.values()) {
+                if (!queues.get(pc).isEmpty() && turnsLeft.get(pc) > 0) {
+                    turnsLeft.put(pc, turnsLeft.get(pc) - 1);
+                    return queues.get(pc).poll();
+                }
+            }
+
+            boolean anyWaiting = false;
+            for (PriorityClass pc : PriorityClass.values()) {
+                turnsLeft.put(pc, pc.turnsPerRound);
+                anyWaiting = anyWaiting || !queues.get(pc).isEmpty();
+            }
+            if (!anyWaiting) {
+                wait(); // Nothing to do, sleep until submit() wakes us
+            }
+        }
+    }
+
+    // Inside BULK every update has the same deadline length, so the head (earliest deadline) is also the oldest
+    void promoteAged(long now) {
+        PriorityQueue<StatusUpdate> bulk = queues.get(PriorityClass.BULK);
+        for (int i = 0; i < maxPromotionsPerPick; i++) {
+            StatusUpdate head = bulk.peek();
+            if (head == null || now - head.enqueuedAt <= maxWaitMillis) {
+                return;
+            }
+            bulk.poll();
+            head.priority = PriorityClass.STANDARD;
+            // Sort it as if it had been a STANDARD update from the start. Keeping its far-away BULK deadline
+            // would put it BEHIND every new STANDARD update, and under a STANDARD flood it would starve there.
+            head.sortKey = Math.min(head.deadline, head.enqueuedAt + PriorityClass.STANDARD.deadlineMillis);
+            queues.get(PriorityClass.STANDARD).add(head);
+            promoted.get(PriorityClass.BULK).incrementAndGet();
+        }
+    }
+
+    void runLoop() {
+        while (running) {
+            StatusUpdate update;
+            try {
+                update = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (System.currentTimeMillis() > update.deadline) {
+                misses.get(update.requested).incrementAndGet();
+            }
+            for (Observer worker : update.observers) {
+                // One broken observer must not kill the only dispatcher thread, or every later update waits forever
+                try {
+                    worker.update(update.status);
+                } catch (RuntimeException e) {
+                    observerFailures.get(update.requested).incrementAndGet();
+                }
+            }
+            delivered.get(update.requested).incrementAndGet();
+        }
+    }
+
+    synchronized int queueDepth(PriorityClass pc) {
+        return queues.get(pc).size();
+    }
+
+    void report() {
+        for (PriorityClass pc : PriorityClass.values()) {
+            System.out.println(pc + " -> waiting: " + queueDepth(pc)
+                + ", delivered: " + delivered.get(pc).get()
+                + ", deadline misses: " + misses.get(pc).get()
+                + ", promoted: " + promoted.get(pc).get()
+                + ", observer failures: " + observerFailures.get(pc).get());
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+    }
+}
+
+// 4. THE SHIPMENT (Same Subject as before, but it hands the update to the Scheduler instead of looping itself)
+class Shipment implements Subject {
+    String mode; // "AIR", "LAND", "OCEAN"
+    UpdateScheduler scheduler;
+    List<Observer> subscribers = new ArrayList<>();
+
+    @Override
+    public void subscribe(Observer obs) {
+        subscribers.add(obs);
+    }
+
+    @Override
+    public void unsubscribe(Observer obs) {
+        subscribers.remove(obs);
+    }
+
+    @Override
+    public void updateStatus(String newStatus) {
+        scheduler.submit(mode, newStatus, subscribers);
+    }
+}
+
+// 5. THE EXECUTION (A BULK flood must not delay the CRITICAL update)
+public class Main {
+    public static void main(String[] args) throws InterruptedException {
+        UpdateScheduler scheduler = new UpdateScheduler();
+        scheduler.maxWaitMillis = 500; // Short, so the flood below is already "aged" when the important update arrives
+
+        Shipment oceanFreight = new Shipment();
+        oceanFreight.mode = "OCEAN";
+        oceanFreight.scheduler = scheduler;
+        oceanFreight.subscribe(status -> {
+            try {
+                Thread.sleep(1); // A slow tracker: the flood takes seconds to drain
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        oceanFreight.subscribe(status -> {
+            throw new IllegalStateException("Tracker is down"); // A broken observer must not stop the dispatcher
+        });
+
+        long[] sentAt = new long[1];
+        Shipment premiumAir = new Shipment();
+        premiumAir.mode = "AIR";
+        premiumAir.scheduler = scheduler;
+        premiumAir.subscribe(status -> System.out.println("SMS to premium customer: " + status
+            + " after " + (System.currentTimeMillis() - sentAt[0]) + " ms"));
+
+        // Flood: 3,000 routine pings, then wait until they are all older than maxWaitMillis
+        for (int i = 0; i < 3_000; i++) {
+            oceanFreight.updateStatus("IN-TRANSIT");
+        }
+        Thread.sleep(1_000);
+
+        // The important one arrives LAST but is delivered almost immediately (well inside its 200 ms deadline)
+        sentAt[0] = System.currentTimeMillis();
+        premiumAir.updateStatus("DELIVERED");
+
+        Thread.sleep(1_000);
+        scheduler.report();
+        scheduler.shutdown();
+
+        // Second run: a never-ending STANDARD flood (LAND pings) on top of a BULK backlog.
+        // The aged BULK updates get promoted, and they must still get through, not sit behind every new LAND ping.
+        UpdateScheduler busy = new UpdateScheduler();
+        busy.maxWaitMillis = 200;
+        Observer slowTracker = status -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        Shipment landFreight = new Shipment();
+        landFreight.mode = "LAND";
+        landFreight.scheduler = busy;
+        landFreight.subscribe(slowTracker);
+
+        long[] lastOceanAt = new long[1];
+        Shipment ocean = new Shipment();
+        ocean.mode = "OCEAN";
+        ocean.scheduler = busy;
+        ocean.subscribe(slowTracker);
+        ocean.subscribe(status -> lastOceanAt[0] = System.currentTimeMillis());
+
+        long floodStart = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            ocean.updateStatus("IN-TRANSIT");
+        }
+        Thread flood = new Thread(() -> {
+            while (System.currentTimeMillis() - floodStart < 5_000) {
+                for (int i = 0; i < 20; i++) {
+                    landFreight.updateStatus("IN-TRANSIT"); // ~2x faster than the dispatcher can deliver
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        flood.start();
+        flood.join();
+
+        System.out.println("\nSTANDARD flood: all 500 OCEAN updates delivered "
+            + (busy.delivered.get(PriorityClass.BULK).get() == 500 ? "after " + (lastOceanAt[0] - floodStart) + " ms" : "NOT YET"));
+        busy.report();
+        busy.shutdown();
+    }
+}
+// Why this helps: Important updates are never stuck behind noise, but noise still gets through eventually.
+
+Cargo Screening Engine (Aho-Corasick) :
+The Concept :
+// Our SecurityCheck only rejects cargo that is exactly "Explosives". Real screening has THOUSANDS of banned terms
+// ("tnt", "dynamite", "lithium battery", "uranium" ...) plus their synonyms.
+
+// The slow way: for every cargo description, loop over every rule and call contains()/regex.
+// 10,000 rules x 1,000,000 descriptions = 10 billion checks. Way too slow.
+
+// The fast way: Aho-Corasick. We "compile" ALL rules ONCE into one machine (an automaton).
+// Then we walk each description ONE character at a time, and the machine tells us every rule that matched,
+// no matter how many rules there are. One pass per description.
+
+// Hot Reload: The compiled machine never changes after it is built. To update the rules we build a NEW machine
+// in the background and swap it in with a single atomic step. Checks in progress keep using the old one safely.
+
+// 1. THE RULE (A term and what it means, synonyms simply point to the same category)
+class ScreeningRule {
+    String term;     // "dynamite"
+    String category; // "EXPLOSIVES"
+}
+
+// 2. THE COMPILED MACHINE (Built once, read-only afterwards)
+class CompiledRuleSet {
+    // Alphabet: a-z, 0-9 and space. Everything else (punctuation, '-', '/') is treated as a space.
+    static final int ALPHABET = 37;
+
+    int[] next;           // next[state * ALPHABET + symbol] = next state (failure links already baked in)
+    String[] matchedRule; // Category that ends at this state (or via its failure chain), null if none
+    int version;
+
+    static int symbol(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= '0' && c <= '9') return 26 + (c - '0');
+        return 36;
+    }
+
+    static CompiledRuleSet compile(List<ScreeningRule> rules, int version) {
+        // Step 1: Build the Trie (a tree of characters)
+        List<int[]> children = new ArrayList<>();
+        List<String> output = new ArrayList<>();
+        children.add(newRow());
+        output.add(null);
+
+        for (ScreeningRule rule : rules) {
+            int state = 0;
+            // Padding with spaces means "tnt" matches the word "tnt" but not inside "attntion"
+            String padded = " " + rule.term + " ";
+            for (int i = 0; i < padded.length(); i++) {
+                int s = symbol(padded.charAt(i));
+                if (children.get(state)[s] == -1) {
+                    children.get(state)[s] = children.size();
+                    children.add(newRow());
+                    output.add(null);
+                }
+                state = children.get(state)[s];
+            }
+            output.set(state, rule.category);
+        }
+
+        // Step 2: Breadth-first walk to add "failure links" and turn the Trie into a full machine
+        int states = children.size();
+        CompiledRuleSet compiled = new CompiledRuleSet();
+        compiled.next = new int[states * ALPHABET];
+        compiled.matchedRule = output.toArray(new String[0]);
+        compiled.version = version;
+
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < ALPHABET; s++) {
+            int child = children.get(0)[s];
+            if (child == -1) {
+                compiled.next[s] = 0;
+            } else {
+                compiled.next[s] = child;
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if (compiled.matchedRule[state] == null) {
+                compiled.matchedRule[state] = compiled.matchedRule[fail[state]]; // Inherit a shorter match
+            }
+            for (int s = 0; s < ALPHABET; s++) {
+                int child = children.get(state)[s];
+                if (child == -1) {
+                    compiled.next[state * ALPHABET + s] = compiled.next[fail[state] * ALPHABET + s];
+                } else {
+                    compiled.next[state * ALPHABET + s] = child;
+                    fail[child] = compiled.next[fail[state] * ALPHABET + s];
+                    queue.add(child);
+                }
+            }
+        }
+        return compiled;
+    }
+
+    static int[] newRow() {
+        int[] row = new int[ALPHABET];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    // THE SINGLE PASS: one array lookup per character, returns the first banned category or null
+    String firstMatch(String cargo) {
+        int state = next[symbol(' ')];
+        for (int i = 0; i < cargo.length(); i++) {
+            state = next[state * ALPHABET + symbol(cargo.charAt(i))];
+            if (matchedRule[state] != null) {
+                return matchedRule[state];
+            }
+        }
+        state = next[state * ALPHABET + symbol(' ')]; // Closing space so a term at the very end still matches
+        return matchedRule[state];
+    }
+}
+
+// 3. THE ENGINE (Holds the current machine and swaps it atomically)
+class ScreeningEngine {
+    AtomicReference<CompiledRuleSet> current = new AtomicReference<>(CompiledRuleSet.compile(new ArrayList<>(), 0));
+
+    // Only reloads wait for each other (synchronized), so two reloads can't both publish version n + 1
+    // and an older rule set can never overwrite a newer one. Checks never take this lock,
+    // so they are not blocked while a new rule set is built.
+    synchronized void reload(List<ScreeningRule> rules) {
+        CompiledRuleSet fresh = CompiledRuleSet.compile(rules, current.get().version + 1);
+        current.set(fresh);
+    }
+
+    String screen(String cargo) {
+        return current.get().firstMatch(cargo); // Read the reference ONCE, use that machine for the whole check
+    }
+}
+
+// 4. THE CHECKPOINT (Same Handler chain as before, now backed by the engine)
+class SecurityCheck implements Handler {
+    Handler nextInLine;
+    ScreeningEngine engine;
+
+    public void setNext(Handler next) {
+        nextInLine = next;
+    }
+
+    public void check(String cargo) {
+        String category = engine.screen(cargo);
+        if (category != null) {
+            System.out.println("Step 2: REJECTED! Prohibited cargo (" + category + ").");
+        } else {
+            System.out.println("Step 2: Security cleared.");
+            if (nextInLine != null) {
+                nextInLine.check(cargo);
+            }
+        }
+    }
+}
+
+// 5. THE EXECUTION (With a benchmark: 10k rules over millions of descriptions)
+public class Main {
+    static ScreeningRule rule(String term, String category) {
+        ScreeningRule r = new ScreeningRule();
+        r.term = term;
+        r.category = category;
+        return r;
+    }
+
+    public static void main(String[] args) {
+        ScreeningEngine engine = new ScreeningEngine();
+        List<ScreeningRule> rules = new ArrayList<>();
+        rules.add(rule("explosives", "EXPLOSIVES"));
+        rules.add(rule("dynamite", "EXPLOSIVES"));   // Synonym
+        rules.add(rule("tnt", "EXPLOSIVES"));        // Synonym
+        rules.add(rule("lithium battery", "HAZMAT"));
+        engine.reload(rules);
+
+        WeightCheck weight = new WeightCheck();
+        SecurityCheck security = new SecurityCheck();
+        security.engine = engine;
+        weight.setNext(security);
+
+        weight.check("Apples");
+        weight.check("2 crates of Dynamite, fragile");
+        weight.check("Laptop with Lithium-Battery");
+
+        // Benchmark
+        Random random = new Random(7);
+        // 10k rules of different shapes: 1 to 3 made-up words of 4 to 10 letters ("qorvex", "tal brimuke")
+        List<ScreeningRule> bigRuleSet = new ArrayList<>();
+        String[] terms = new String[10_000];
+        for (int i = 0; i < terms.length; i++) {
+            int words = 1 + random.nextInt(3);
+            StringBuilder term = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                term.append(w == 0 ? "" : " ").append(madeUpWord(random));
+            }
+            terms[i] = term.toString();
+            bigRuleSet.add(rule(terms[i], "RULE-" + i));
+        }
+        long compileStart = System.nanoTime();
+        engine.reload(bigRuleSet);
+        System.out.println("Compiled 10k rules in " + (System.nanoTime() - compileStart) / 1_000_000 + " ms");
+
+        // 1M DIFFERENT descriptions, 6 to 20 everyday words each. Only ~2% carry a banned term (at a random spot),
+        // so most are clean and take the full-length, no-match path like real traffic.
+        String[] vocabulary = { "pallet", "of", "mixed", "electronics", "boxes", "frozen", "fish", "cotton", "shirts",
+            "spare", "parts", "for", "trucks", "handle", "with", "care", "fragile", "glassware", "books", "toys",
+            "medical", "supplies", "furniture", "flat", "packed", "coffee", "beans", "rice", "bags", "steel", "coils",
+            "machine", "tools", "ceramic", "tiles", "paper", "rolls", "leather", "shoes", "kg", "units", "crate" };
+        int descriptions = 1_000_000;
+        String[] cargo = new String[descriptions];
+        int planted = 0;
+        for (int i = 0; i < descriptions; i++) {
+            int words = 6 + random.nextInt(15);
+            int bannedAt = random.nextInt(100) < 2 ? random.nextInt(words) : -1;
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < words; w++) {
+                text.append(w == 0 ? "" : " ");
+                if (w == bannedAt) {
+                    text.append(terms[random.nextInt(terms.length)]);
+                    planted++;
+                } else if (random.nextInt(8) == 0) {
+                    text.append(random.nextInt(10_000)); // Quantities and ids make every line different
+                } else {
+                    text.append(vocabulary[random.nextInt(vocabulary.length)]);
+                }
+            }
+            cargo[i] = text.toString();
+        }
+
+        // Warm-up on a slice (lets the JIT compile firstMatch), then one timed pass over all of them
+        for (int i = 0; i < 100_000; i++) {
+            engine.screen(cargo[i]);
+        }
+        int rejected = 0;
+        long characters = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < descriptions; i++) {
+            characters += cargo[i].length();
+            if (engine.screen(cargo[i]) != null) {
+                rejected++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Screened " + descriptions + " distinct descriptions (" + characters / 1_000_000 + "M chars) in "
+            + elapsed / 1_000_000 + " ms (" + (descriptions * 1_000_000_000L / elapsed) + "/sec), rejected " + rejected
+            + ", banned terms planted " + planted);
+    }
+
+    static String madeUpWord(Random random) {
+        int length = 4 + random.nextInt(7);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
+// Why this helps: The cost per description depends on its LENGTH, not on how many rules we have.
+// Adding the 10,001st rule makes screening no slower.
+
+Gift Card Balance Service :
+The Concept :
+// Our GiftCardPayment (from the LSP example) extends PaymentSystem and has no balance at all.
+// During a promotion, thousands of people redeem the SAME popular cards at the same moment.
+
+// Locking each card would make all of them wait in one line. Instead we use CAS (Compare-And-Swap):
+// 1. Read the balance (say 100).
+// 2. Calculate the new balance (100 - 30 = 70). If it would go below 0, REJECT right here.
+// 3. Tell the CPU: "Set it to 70, but ONLY if it is still 100."
+// 4. If someone else changed it first, the CPU says "No". We just read again and retry.
+// Nobody ever waits on a lock, and the balance can never go negative because we check before every swap.
+
+// Balances live in ONE primitive array (AtomicLongArray), indexed by card id. No objects, no boxing.
+
+// Durability: every successful redemption is written to an append-only Journal file.
+// A single writer thread collects many entries and flushes them to disk together ("group commit"),
+// so we pay for one disk sync per batch instead of one per redemption. On restart, we replay the Journal.
+
+// 1. THE JOURNAL (Append-only, one writer thread, group commit)
+class RedemptionJournal {
+    static final int RECORD_SIZE = 16; // cardId (int) + amount (long) + padding (int)
+
+    FileChannel channel;
+    AtomicLongArray balances; // So a redemption that never reached the disk can be credited back
+    long committedSize;       // File size after the last batch that was fully written AND synced
+    BlockingQueue<long[]> pending = new LinkedBlockingQueue<>();
+    Map<Long, CompletableFuture<Void>> waiters = new ConcurrentHashMap<>();
+    AtomicLong sequence = new AtomicLong();
+    Thread writer;
+    volatile boolean running = true;
+    volatile boolean stopped = false;
+
+    RedemptionJournal(Path file, AtomicLongArray balances) throws IOException {
+        this.balances = balances;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // A crash in the middle of a write can leave half a record at the end. Cut it off before appending more.
+        committedSize = channel.size() - channel.size() % RECORD_SIZE;
+        channel.truncate(committedSize);
+        writer = new Thread(this::writeLoop, "gift-card-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Returns a future that completes once the record is safely on disk.
+    // If it can't be written, the amount is credited back and the future fails, so memory and disk always agree.
+    CompletableFuture<Void> append(int cardId, long amount) {
+        long seq = sequence.incrementAndGet();
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        waiters.put(seq, durable);
+        long[] entry = { seq, cardId, amount };
+        pending.add(entry);
+        // The writer may have already gone. Whoever removes the entry from the queue is the one who settles it.
+        if (stopped && pending.remove(entry)) {
+            rollback(entry, new IllegalStateException("Journal is closed"));
+        }
+        return durable;
+    }
+
+    void rollback(long[] entry, Exception cause) {
+        balances.addAndGet((int) entry[1], entry[2]);
+        waiters.remove(entry[0]).completeExceptionally(cause);
+    }
+
+    void writeLoop() {
+        List<long[]> batch = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+        try {
+            while (running || !pending.isEmpty()) {
+                long[] first = pending.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, 4095);
+
+                buffer.clear();
+                for (long[] entry : batch) {
+                    buffer.putInt((int) entry[1]).putLong(entry[2]).putInt(0);
+                }
+                buffer.flip();
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false); // ONE disk sync for the whole batch
+                    committedSize += (long) batch.size() * RECORD_SIZE;
+                    for (long[] entry : batch) {
+                        waiters.remove(entry[0]).complete(null);
+                    }
+                } catch (IOException e) {
+                    // Undo the whole batch: cut any torn bytes off the file, then give the money back
+                    for (long[] entry : batch) {
+                        rollback(entry, e);
+                    }
+                    try {
+                        channel.truncate(committedSize);
+                    } catch (IOException truncateFailed) {
+                        return; // Can't trust the file any more, stop journaling (finally fails everyone still waiting)
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            IllegalStateException closed = new IllegalStateException("Journal is closed");
+            long[] entry;
+            while ((entry = pending.poll()) != null) {
+                rollback(entry, closed); // Nobody is left hanging in join()
+            }
+        }
+    }
+
+    // Rebuilds balances after a restart: start from the issued amounts and subtract every journaled redemption
+    static void replay(Path file, AtomicLongArray balances) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (data.remaining() >= RECORD_SIZE) {
+            int cardId = data.getInt();
+            long amount = data.getLong();
+            data.getInt();
+            balances.addAndGet(cardId, -amount);
+        }
+    }
+
+    void close() throws IOException, InterruptedException {
+        running = false;
+        writer.join();
+        channel.close();
+    }
+}
+
+// 2. THE BALANCE SERVICE (Lock-free redemption)
+class GiftCardBalances {
+    AtomicLongArray balances; // balances[cardId] in paise/cents
+    RedemptionJournal journal;
+    LongAdder casRetries = new LongAdder(); // How often we lost the race and had to try again
+
+    GiftCardBalances(long[] issued, Path journalFile) throws IOException {
+        balances = new AtomicLongArray(issued);
+        RedemptionJournal.replay(journalFile, balances);
+        journal = new RedemptionJournal(journalFile, balances);
+    }
+
+    // Returns null if rejected, otherwise a future that completes when the redemption is durable
+    // (or fails, with the amount already credited back, if the Journal could not write it)
+    CompletableFuture<Void> redeem(int cardId, long amount) {
+        if (amount <= 0) {
+            return null;
+        }
+        while (true) {
+            long current = balances.get(cardId);
+            long updated = current - amount;
+            if (updated < 0) {
+                return null; // Overdraft: rejected, nothing changed, no lock taken
+            }
+            if (balances.compareAndSet(cardId, current, updated)) {
+                return journal.append(cardId, amount);
+            }
+            casRetries.increment();
+            Thread.onSpinWait(); // Someone beat us to it, read again and retry
+        }
+    }
+
+    long balance(int cardId) {
+        return balances.get(cardId);
+    }
+}
+
+// 3. THE PAYMENT (Still only a basic PaymentSystem, no refund promised, so LSP stays happy)
+class GiftCardPayment extends PaymentSystem {
+    GiftCardBalances service;
+    int cardId;
+    long amount;
+
+    void processPayment() {
+        CompletableFuture<Void> durable = service.redeem(cardId, amount);
+        if (durable == null) {
+            System.out.println("Gift card " + cardId + ": DECLINED, not enough balance");
+        } else {
+            try {
+                durable.join();
+                System.out.println("Gift card " + cardId + ": PAID " + amount);
+            } catch (CompletionException e) {
+                System.out.println("Gift card " + cardId + ": FAILED, amount credited back (" + e.getCause().getMessage() + ")");
+            }
+        }
+    }
+}
+
+// 4. THE EXECUTION (Stress test: many threads hammering a few hot cards)
+public class Main {
+    public static void main(String[] args) throws Exception {
+        // 64 threads, each trying 20k redemptions of 1-50 on only 4 "popular" cards
+        int threads = 64;
+        int attemptsPerThread = 20_000;
+        int hotCards = 4;
+
+        // Each hot card holds ~90% of what will be asked of it, so most redemptions SUCCEED
+        // (and fight over the same card) for almost the whole run; only the tail turns into overdrafts
+        long expectedDemandPerCard = threads * (long) attemptsPerThread * 25 / hotCards;
+        long startingBalance = expectedDemandPerCard * 9 / 10;
+
+        int cards = 1_000;
+        long[] issued = new long[cards];
+        Arrays.fill(issued, startingBalance);
+
+        Path journalFile = Files.createTempFile("gift-card-journal", ".log");
+        Files.delete(journalFile);
+        GiftCardBalances service = new GiftCardBalances(issued, journalFile);
+
+        GiftCardPayment payment = new GiftCardPayment();
+        payment.service = service;
+        payment.cardId = 0;
+        payment.amount = 2_500;
+        payment.processPayment();
+
+        AtomicLong rejected = new AtomicLong();
+        AtomicBoolean wentNegative = new AtomicBoolean();
+        List<List<CompletableFuture<Void>>> durablePerThread = new ArrayList<>();
+        List<List<Long>> amountsPerThread = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            List<CompletableFuture<Void>> durable = new ArrayList<>();
+            List<Long> amounts = new ArrayList<>();
+            durablePerThread.add(durable);
+            amountsPerThread.add(amounts);
+            pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    int cardId = random.nextInt(hotCards);
+                    long amount = 1 + random.nextInt(50);
+                    CompletableFuture<Void> result = service.redeem(cardId, amount);
+                    if (result == null) {
+                        rejected.incrementAndGet();
+                    } else {
+                        durable.add(result);
+                        amounts.add(amount);
+                    }
+                    if (service.balance(cardId) < 0) {
+                        wentNegative.set(true);
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        // A redemption only counts once it is on disk
+        long accepted = 0;
+        long acceptedAmount = 0;
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < durablePerThread.get(t).size(); i++) {
+                durablePerThread.get(t).get(i).join();
+                accepted++;
+                acceptedAmount += amountsPerThread.get(t).get(i);
+            }
+        }
+        long durableElapsed = System.nanoTime() - start;
+        pool.shutdown();
+        service.journal.close();
+
+        long remaining = 0;
+        for (int cardId = 0; cardId < hotCards; cardId++) {
+            remaining += service.balance(cardId);
+        }
+        long attempts = threads * (long) attemptsPerThread;
+        System.out.println("Attempts: " + attempts + ", successful: " + accepted + " (" + (accepted * 100 / attempts)
+            + "%), overdrafts rejected: " + rejected.get() + ", CAS retries: " + service.casRetries.sum());
+        System.out.println("Successful redemptions/sec: " + (accepted * 1_000_000_000L / elapsed)
+            + " (" + (accepted * 1_000_000_000L / durableElapsed) + "/sec counting until on disk)");
+        System.out.println("Any balance negative? " + wentNegative.get());
+        // Money check: what was issued = what is left + what was redeemed (nothing lost, nothing created)
+        System.out.println("Books balance? " + (hotCards * startingBalance == remaining + acceptedAmount + 2_500));
+
+        // Restart check: replaying the Journal gives exactly the same balances
+        AtomicLongArray recovered = new AtomicLongArray(issued);
+        RedemptionJournal.replay(journalFile, recovered);
+        boolean same = true;
+        for (int cardId = 0; cardId < cards; cardId++) {
+            same = same && recovered.get(cardId) == service.balance(cardId);
+        }
+        System.out.println("Journal replay matches? " + same);
+    }
+}
+// Why this helps: Contention on one card only costs a few retries, never a blocked thread,
+// and the "check before swap" rule makes a negative balance impossible.
+
+Virtual Threads and Structured Concurrency :
+The Concept :
+// In the SRP example we run the experts one after another: pay, then log, then notify. Every step blocks.
+// With a normal ("platform") thread pool of 200 threads, only 200 payments can be in progress at once,
+// because each one holds its thread while it sleeps waiting for the bank, the database or the email server.
+
+// Virtual Threads (Java 21+) are very cheap threads managed by the JVM. When a virtual thread waits on I/O,
+// it steps off the real CPU thread so another one can run. So we can give EVERY payment its own thread,
+// and have 100k+ payments in flight at the same time.
+
+// Structured Concurrency: After the payment succeeds, logging, notification and receipt don't depend on each other.
+// We start them as "Subtasks" inside one Scope. The Scope has one shared deadline:
+// -- If any subtask fails, the others are cancelled.
+// -- If the deadline passes, all of them are cancelled.
+// -- The Scope never finishes while a subtask is still running, so nothing leaks.
+// (StructuredTaskScope is a preview API in Java 21: compile and run with --enable-preview.)
+
+// Pinning: A virtual thread gets "pinned" to its CPU thread if it blocks inside a synchronized block.
+// So the experts below only use plain blocking calls (sleep stands in for I/O) and no synchronized.
+
+// 1. THE EXPERTS (Same jobs as the SRP example, each one does blocking I/O)
+class Logger {
+    void logTransaction(String status) throws InterruptedException {
+        Thread.sleep(20); // Pretend: write to the database
+    }
+}
+
+class Notification {
+    void sendEmail() throws InterruptedException {
+        Thread.sleep(50); // Pretend: call the email server
+    }
+}
+
+class ReceiptService {
+    void sendReceipt(double amount) throws InterruptedException {
+        Thread.sleep(30); // Pretend: render and store the PDF
+    }
+}
+
+interface PaymentMethod {
+    void pay() throws InterruptedException;
+}
+
+class CardPayment implements PaymentMethod {
+    public void pay() throws InterruptedException {
+        Thread.sleep(100); // Pretend: call the card network
+    }
+}
+
+// 2. THE PROCESSOR (Pay first, then the three independent steps together)
+// Once pay() returns, the customer HAS been charged. A slow email or receipt must not turn that into a "failed payment",
+// so follow-up problems are counted here and the payment is still reported as paid.
+enum PaymentOutcome {
+    COMPLETED,           // Paid, and logging + email + receipt all finished in time
+    FOLLOW_UPS_TIMED_OUT, // Paid, but the follow-ups missed the shared deadline and were cancelled
+    FOLLOW_UPS_FAILED     // Paid, but one follow-up threw, so the others were cancelled
+}
+
+class PaymentProcessor {
+    Logger logger = new Logger();
+    Notification notify = new Notification();
+    ReceiptService receipts = new ReceiptService();
+    Duration postPaymentDeadline = Duration.ofSeconds(2);
+    LongAdder followUpTimeouts = new LongAdder(); // To be retried later by a background job
+    LongAdder followUpFailures = new LongAdder();
+
+    PaymentOutcome process(PaymentMethod method, double amount) throws InterruptedException {
+        method.pay(); // Step 1 must finish before anything else. If THIS throws, the payment really failed.
+
+        // Steps 2, 3 and 4 run at the same time, each in its own virtual thread
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            scope.fork(() -> { logger.logTransaction("SUCCESSFUL"); return null; });
+            scope.fork(() -> { notify.sendEmail(); return null; });
+            scope.fork(() -> { receipts.sendReceipt(amount); return null; });
+
+            scope.joinUntil(Instant.now().plus(postPaymentDeadline)); // Shared deadline, cancels all on timeout
+            scope.throwIfFailed();                                     // One failed, the others were cancelled
+            return PaymentOutcome.COMPLETED;
+        } catch (TimeoutException e) {
+            followUpTimeouts.increment();
+            return PaymentOutcome.FOLLOW_UPS_TIMED_OUT;
+        } catch (ExecutionException e) {
+            followUpFailures.increment();
+            return PaymentOutcome.FOLLOW_UPS_FAILED;
+        }
+    }
+}
+
+// 3. THE SERVER (One virtual thread per payment)
+class VirtualThreadPaymentServer {
+    PaymentProcessor processor = new PaymentProcessor();
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    Future<PaymentOutcome> submit(PaymentMethod method, double amount) {
+        return executor.submit(() -> processor.process(method, amount));
+    }
+}
+
+// 4. THE LOAD GENERATOR (Same payments, virtual threads vs a platform thread pool)
+// It never stops at the first problem: every payment ends up in one of the counters below.
+public class Main {
+    static void run(String name, ExecutorService executor, int payments) throws InterruptedException {
+        PaymentProcessor processor = new PaymentProcessor();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        AtomicLong paymentFailures = new AtomicLong();
+        long[] latencyMicros = new long[payments];
+        Map<PaymentOutcome, LongAdder> outcomes = new EnumMap<>(PaymentOutcome.class);
+        for (PaymentOutcome outcome : PaymentOutcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+        CountDownLatch done = new CountDownLatch(payments);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < payments; i++) {
+            int id = i;
+            long submittedAt = System.nanoTime();
+            executor.execute(() -> {
+                peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    outcomes.get(processor.process(new CardPayment(), 500.0)).increment();
+                } catch (Exception e) {
+                    paymentFailures.incrementAndGet(); // pay() itself failed (or we were interrupted)
+                } finally {
+                    inFlight.decrementAndGet();
+                    latencyMicros[id] = (System.nanoTime() - submittedAt) / 1_000; // Includes time queued in the pool
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        executor.shutdown();
+
+        Arrays.sort(latencyMicros);
+        System.out.println(name + ": " + payments + " payments in " + elapsedMillis + " ms"
+            + ", peak in flight " + peakInFlight.get()
+            + ", latency p50 " + latencyMicros[payments / 2] / 1_000 + " ms"
+            + ", p99 " + latencyMicros[payments * 99 / 100] / 1_000 + " ms");
+        System.out.println("    completed " + outcomes.get(PaymentOutcome.COMPLETED).sum()
+            + ", follow-ups timed out " + outcomes.get(PaymentOutcome.FOLLOW_UPS_TIMED_OUT).sum()
+            + ", follow-ups failed " + outcomes.get(PaymentOutcome.FOLLOW_UPS_FAILED).sum()
+            + ", payments failed " + paymentFailures.get());
+    }
+
+    public static void main(String[] args) throws Exception {
+        VirtualThreadPaymentServer server = new VirtualThreadPaymentServer();
+        System.out.println("Single payment on a virtual thread: " + server.submit(new CardPayment(), 500.0).get());
+
+        int payments = 100_000;
+
+        run("Virtual threads    ", Executors.newVirtualThreadPerTaskExecutor(), payments);
+
+        // Same work on 200 platform threads. The subtasks still use virtual threads inside the Scope,
+        // but only 200 payments can be in flight at once, so expect roughly payments / 200 * 150 ms.
+        run("Platform pool (200)", Executors.newFixedThreadPool(200), payments);
+    }
+}
+// Why this helps: Waiting is now almost free. Each payment still reads like simple step-by-step code,
+// but the machine is busy with other payments while this one waits.
+
+Multi-Modal Route Planner (Strategy Pattern, for real) :
+The Concept :
+// Our AirStrategy and LandStrategy just print "Fast flight path selected". Nobody actually picks a path,
+// and a shipment that goes Truck -> Ship -> Truck is impossible to express.
+
+// The Route Planner turns the whole transport network into a Graph:
+// -- Nodes: warehouses, airports, sea ports, road junctions.
+// -- Edges: a road segment, a flight or a sea lane. Each edge knows its MODE, its TIME and its COST.
+// -- Changing mode (truck to ship) is just an edge from the road node to the port node with a handling time.
+
+// 1. CSR (Compressed Sparse Row): Instead of a List of Edge objects per node, we keep a few big int arrays.
+//    The edges leaving node v are at positions firstEdge[v] .. firstEdge[v + 1] - 1. Very compact, very cache friendly.
+// 2. Dijkstra finds the best path. A* makes it faster by walking towards the destination first.
+// 3. Landmarks (ALT): We pick a few nodes and precompute the distance from them to EVERY node.
+//    The triangle rule then gives A* a guaranteed lower bound for "how far is it still?", so it explores far fewer nodes.
+// 4. Contraction Hierarchies (CH): At build time we "contract" nodes one by one, least important first.
+//    Removing a node adds a "shortcut" edge between its neighbours whenever the only best path went through it.
+//    A query then only climbs UP the hierarchy from both ends and meets in the middle: a few hundred nodes
+//    instead of hundreds of thousands. Shortcuts remember the node they skipped, so we can unpack the real route.
+
+// 1. THE GRAPH (Built once from a list of edges, then read-only)
+class TransportGraph {
+    static final byte ROAD = 0, AIR = 1, OCEAN = 2, TRANSFER = 3;
+
+    int nodeCount;
+    int[] firstEdge;  // size nodeCount + 1
+    int[] target;     // size edgeCount
+    int[] minutes;    // size edgeCount
+    int[] cents;      // size edgeCount
+    byte[] mode;      // size edgeCount
+
+    // Edges are given as parallel arrays; every edge is added in BOTH directions
+    static TransportGraph build(int nodeCount, int[] from, int[] to, int[] minutes, int[] cents, byte[] mode) {
+        TransportGraph g = new TransportGraph();
+        int edges = from.length * 2;
+        g.nodeCount = nodeCount;
+        g.firstEdge = new int[nodeCount + 1];
+        g.target = new int[edges];
+        g.minutes = new int[edges];
+        g.cents = new int[edges];
+        g.mode = new byte[edges];
+
+        // Count edges per node, then turn counts into start positions (prefix sum)
+        for (int i = 0; i < from.length; i++) {
+            g.firstEdge[from[i] + 1]++;
+            g.firstEdge[to[i] + 1]++;
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            g.firstEdge[v + 1] += g.firstEdge[v];
+        }
+        int[] fill = Arrays.copyOf(g.firstEdge, nodeCount);
+        for (int i = 0; i < from.length; i++) {
+            g.put(fill[from[i]]++, to[i], minutes[i], cents[i], mode[i]);
+            g.put(fill[to[i]]++, from[i], minutes[i], cents[i], mode[i]);
+        }
+        return g;
+    }
+
+    void put(int e, int to, int min, int cost, byte m) {
+        target[e] = to;
+        minutes[e] = min;
+        cents[e] = cost;
+        mode[e] = m;
+    }
+
+    int weight(int e, boolean fastest) {
+        return fastest ? minutes[e] : cents[e];
+    }
+}
+
+// 2. A TINY BINARY HEAP (Primitive arrays, no Integer / Long boxing). Shared by every search below.
+class MinHeap {
+    long[] keys = new long[1024];
+    int[] nodes = new int[1024];
+    int size;
+
+    void clear() {
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long topKey() {
+        return keys[0];
+    }
+
+    void push(long key, int node) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (keys[parent] <= key) break;
+            keys[i] = keys[parent];
+            nodes[i] = nodes[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+    }
+
+    int pop() {
+        int top = nodes[0];
+        long key = keys[--size];
+        int node = nodes[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (keys[child] >= key) break;
+            keys[i] = keys[child];
+            nodes[i] = nodes[child];
+            i = child;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+        return top;
+    }
+}
+
+// 3. THE CONTRACTION HIERARCHY (One per metric: built once, then answers queries very fast)
+class ContractionHierarchy {
+    static final long INF = Long.MAX_VALUE / 4;
+    static final int ESTIMATE_SETTLE_LIMIT = 50;  // Guessing a priority can be rough and quick
+    static final int CONTRACT_SETTLE_LIMIT = 500; // Real contraction looks harder, so it adds fewer useless shortcuts
+
+    int nodeCount;
+    int[] rank; // Order of contraction: higher rank = more important node
+
+    // The final "upward" graph in CSR: from each node, only edges to MORE important nodes
+    int[] firstUp;
+    int[] upTarget;
+    int[] upWeight;
+    int[] upMiddle; // The node a shortcut skips, -1 for a real edge
+
+    // Only used while building: a changeable neighbour list per node (shortcuts get added here)
+    int[][] adjNode;
+    int[][] adjWeight;
+    int[][] adjMiddle;
+    int[] adjCount;
+    int[] deletedNeighbours;
+    int[] level;                 // How many contraction "layers" are below this node
+    int witnessSettleLimit;      // A "witness" is a path around the node; we only look this far for one
+
+    // Reused by the witness searches and the queries
+    MinHeap witnessHeap = new MinHeap();
+    long[] witnessDist;
+    int[] witnessSeen;
+    int witnessQuery;
+
+    long[][] dist = new long[2][];
+    int[][] parent = new int[2][];
+    int[][] seen = new int[2][];
+    MinHeap[] heaps = { new MinHeap(), new MinHeap() };
+    int query;
+    int lastMeeting;
+
+    ContractionHierarchy(TransportGraph graph, boolean fastest) {
+        nodeCount = graph.nodeCount;
+        int n = nodeCount;
+        rank = new int[n];
+        adjNode = new int[n][];
+        adjWeight = new int[n][];
+        adjMiddle = new int[n][];
+        adjCount = new int[n];
+        deletedNeighbours = new int[n];
+        level = new int[n];
+        witnessDist = new long[n];
+        witnessSeen = new int[n];
+        for (int v = 0; v < n; v++) {
+            int degree = graph.firstEdge[v + 1] - graph.firstEdge[v];
+            adjNode[v] = new int[Math.max(4, degree)];
+            adjWeight[v] = new int[Math.max(4, degree)];
+            adjMiddle[v] = new int[Math.max(4, degree)];
+        }
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+                if (graph.target[e] != v) {
+                    addOrImprove(v, graph.target[e], graph.weight(e, fastest), -1);
+                }
+            }
+        }
+
+        // Upward edges of each node, saved at the moment it is contracted
+        int[][] upNode = new int[n][];
+        int[][] upW = new int[n][];
+        int[][] upMid = new int[n][];
+
+        // Ordering: take the cheapest node, re-check its priority, contract it only if it is still the cheapest.
+        // After a contraction its neighbours have changed, so their priorities are refreshed too.
+        MinHeap order = new MinHeap();
+        long[] currentPriority = new long[n];
+        boolean[] contracted = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            currentPriority[v] = priority(v);
+            order.push(currentPriority[v], v);
+        }
+        int nextRank = 0;
+        while (!order.isEmpty()) {
+            long key = order.topKey();
+            int v = order.pop();
+            if (contracted[v] || key != currentPriority[v]) {
+                continue; // An outdated entry, a newer one for this node is in the heap
+            }
+            long current = priority(v);
+            if (!order.isEmpty() && current > order.topKey()) {
+                currentPriority[v] = current;
+                order.push(current, v);
+                continue;
+            }
+            upNode[v] = Arrays.copyOf(adjNode[v], adjCount[v]);
+            upW[v] = Arrays.copyOf(adjWeight[v], adjCount[v]);
+            upMid[v] = Arrays.copyOf(adjMiddle[v], adjCount[v]);
+            contract(v);
+            contracted[v] = true;
+            rank[v] = nextRank++;
+            for (int u : upNode[v]) {
+                currentPriority[u] = priority(u);
+                order.push(currentPriority[u], u);
+            }
+        }
+
+        firstUp = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            firstUp[v + 1] = firstUp[v] + upNode[v].length;
+        }
+        upTarget = new int[firstUp[n]];
+        upWeight = new int[firstUp[n]];
+        upMiddle = new int[firstUp[n]];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(upNode[v], 0, upTarget, firstUp[v], upNode[v].length);
+            System.arraycopy(upW[v], 0, upWeight, firstUp[v], upW[v].length);
+            System.arraycopy(upMid[v], 0, upMiddle, firstUp[v], upMid[v].length);
+        }
+        adjNode = null; // Build-only data, let it go
+        adjWeight = null;
+        adjMiddle = null;
+
+        for (int side = 0; side < 2; side++) {
+            dist[side] = new long[n];
+            parent[side] = new int[n];
+            seen[side] = new int[n];
+        }
+    }
+
+    // "Edge difference": shortcuts we would add minus edges we would remove (weighted most).
+    // Spreading out contracted neighbours and keeping levels low keeps the hierarchy balanced.
+    long priority(int v) {
+        witnessSettleLimit = ESTIMATE_SETTLE_LIMIT;
+        return 4L * (shortcutsFor(v, false) - adjCount[v]) + deletedNeighbours[v] + level[v];
+    }
+
+    void contract(int v) {
+        witnessSettleLimit = CONTRACT_SETTLE_LIMIT;
+        shortcutsFor(v, true);
+        for (int i = 0; i < adjCount[v]; i++) {
+            int u = adjNode[v][i];
+            remove(u, v);
+            deletedNeighbours[u]++;
+            level[u] = Math.max(level[u], level[v] + 1);
+        }
+    }
+
+    // For every pair of neighbours (u, w) of v: is u -> v -> w the ONLY best way? If so we need a shortcut u - w.
+    int shortcutsFor(int v, boolean add) {
+        int degree = adjCount[v];
+        long maxWeight = 0;
+        for (int i = 0; i < degree; i++) {
+            maxWeight = Math.max(maxWeight, adjWeight[v][i]);
+        }
+        int[] pendingFrom = add ? new int[degree * degree] : null;
+        int[] pendingTo = add ? new int[degree * degree] : null;
+        long[] pendingWeight = add ? new long[degree * degree] : null;
+        int shortcuts = 0;
+        for (int i = 0; i < degree; i++) {
+            int u = adjNode[v][i];
+            long viaU = adjWeight[v][i];
+            witnessSearch(u, v, viaU + maxWeight);
+            for (int j = i + 1; j < degree; j++) {
+                int w = adjNode[v][j];
+                long via = viaU + adjWeight[v][j];
+                if (witnessSeen[w] != witnessQuery || witnessDist[w] > via) {
+                    if (add) {
+                        pendingFrom[shortcuts] = u;
+                        pendingTo[shortcuts] = w;
+                        pendingWeight[shortcuts] = via;
+                    }
+                    shortcuts++;
+                }
+            }
+        }
+        for (int k = 0; add && k < shortcuts; k++) {
+            addOrImprove(pendingFrom[k], pendingTo[k], (int) pendingWeight[k], v);
+            addOrImprove(pendingTo[k], pendingFrom[k], (int) pendingWeight[k], v);
+        }
+        return shortcuts;
+    }
+
+    // A small Dijkstra from u that is not allowed to pass through v, and gives up after a few settled nodes
+    void witnessSearch(int u, int v, long limit) {
+        witnessQuery++;
+        witnessHeap.clear();
+        witnessDist[u] = 0;
+        witnessSeen[u] = witnessQuery;
+        witnessHeap.push(0, u);
+        int settled = 0;
+        while (!witnessHeap.isEmpty() && settled < witnessSettleLimit) {
+            long key = witnessHeap.topKey();
+            int x = witnessHeap.pop();
+            if (key > witnessDist[x]) continue;
+            if (key > limit) break;
+            settled++;
+            for (int i = 0; i < adjCount[x]; i++) {
+                int y = adjNode[x][i];
+                if (y == v) continue;
+                long candidate = key + adjWeight[x][i];
+                if (witnessSeen[y] != witnessQuery || candidate < witnessDist[y]) {
+                    witnessSeen[y] = witnessQuery;
+                    witnessDist[y] = candidate;
+                    witnessHeap.push(candidate, y);
+                }
+            }
+        }
+    }
+
+    void addOrImprove(int from, int to, int weight, int middle) {
+        for (int i = 0; i < adjCount[from]; i++) {
+            if (adjNode[from][i] == to) {
+                if (weight < adjWeight[from][i]) {
+                    adjWeight[from][i] = weight;
+                    adjMiddle[from][i] = middle;
+                }
+                return;
+            }
+        }
+        if (adjCount[from] == adjNode[from].length) {
+            adjNode[from] = Arrays.copyOf(adjNode[from], adjCount[from] * 2);
+            adjWeight[from] = Arrays.copyOf(adjWeight[from], adjCount[from] * 2);
+            adjMiddle[from] = Arrays.copyOf(adjMiddle[from], adjCount[from] * 2);
+        }
+        adjNode[from][adjCount[from]] = to;
+        adjWeight[from][adjCount[from]] = weight;
+        adjMiddle[from][adjCount[from]] = middle;
+        adjCount[from]++;
+    }
+
+    void remove(int from, int to) {
+        for (int i = 0; i < adjCount[from]; i++) {
+            if (adjNode[from][i] == to) {
+                int last = --adjCount[from];
+                adjNode[from][i] = adjNode[from][last];
+                adjWeight[from][i] = adjWeight[from][last];
+                adjMiddle[from][i] = adjMiddle[from][last];
+                return;
+            }
+        }
+    }
+
+    // THE QUERY: climb up from both ends at once (side 0 from the origin, side 1 from the destination)
+    long distance(int origin, int destination) {
+        query++;
+        long best = INF;
+        lastMeeting = -1;
+        int[] start = { origin, destination };
+        for (int side = 0; side < 2; side++) {
+            heaps[side].clear();
+            dist[side][start[side]] = 0;
+            parent[side][start[side]] = -1;
+            seen[side][start[side]] = query;
+            heaps[side].push(0, start[side]);
+        }
+        while (true) {
+            long top0 = heaps[0].isEmpty() ? INF : heaps[0].topKey();
+            long top1 = heaps[1].isEmpty() ? INF : heaps[1].topKey();
+            if (Math.min(top0, top1) >= best) {
+                break; // Nothing left on either side can beat what we found
+            }
+            int side = top0 <= top1 ? 0 : 1;
+            long key = heaps[side].topKey();
+            int v = heaps[side].pop();
+            if (key > dist[side][v]) continue;
+
+            int other = 1 - side;
+            if (seen[other][v] == query && key + dist[other][v] < best) {
+                best = key + dist[other][v];
+                lastMeeting = v;
+            }
+
+            // Stall-on-demand: if a more important node already reaches v more cheaply, v can't be on the best path
+            boolean stalled = false;
+            for (int e = firstUp[v]; e < firstUp[v + 1] && !stalled; e++) {
+                int u = upTarget[e];
+                stalled = seen[side][u] == query && dist[side][u] + upWeight[e] < key;
+            }
+            if (stalled) continue;
+
+            for (int e = firstUp[v]; e < firstUp[v + 1]; e++) {
+                int w = upTarget[e];
+                long candidate = key + upWeight[e];
+                if (seen[side][w] != query || candidate < dist[side][w]) {
+                    seen[side][w] = query;
+                    dist[side][w] = candidate;
+                    parent[side][w] = v;
+                    heaps[side].push(candidate, w);
+                }
+            }
+        }
+        return best;
+    }
+
+    // Rebuilds the real route of the last query by unpacking every shortcut on it
+    List<Integer> lastRoute(int origin) {
+        List<Integer> path = new ArrayList<>();
+        if (lastMeeting == -1) {
+            return path;
+        }
+        List<Integer> upFromOrigin = new ArrayList<>();
+        for (int v = lastMeeting; v != -1; v = parent[0][v]) {
+            upFromOrigin.add(v);
+        }
+        Collections.reverse(upFromOrigin);
+        path.add(origin);
+        for (int i = 0; i + 1 < upFromOrigin.size(); i++) {
+            unpack(upFromOrigin.get(i), upFromOrigin.get(i + 1), path);
+        }
+        for (int v = lastMeeting; parent[1][v] != -1; v = parent[1][v]) {
+            unpack(v, parent[1][v], path);
+        }
+        return path;
+    }
+
+    // Appends the real nodes from a to b (a itself is already in the path)
+    void unpack(int a, int b, List<Integer> path) {
+        int middle = upMiddle[upEdge(a, b)];
+        if (middle == -1) {
+            path.add(b);
+        } else {
+            unpack(a, middle, path);
+            unpack(middle, b, path);
+        }
+    }
+
+    // The edge between a and b is stored once, on the less important of the two
+    int upEdge(int a, int b) {
+        int low = rank[a] < rank[b] ? a : b;
+        int high = low == a ? b : a;
+        for (int e = firstUp[low]; e < firstUp[low + 1]; e++) {
+            if (upTarget[e] == high) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("No hierarchy edge between " + a + " and " + b);
+    }
+}
+
+// 4. THE PLANNER (CH for the fast queries, A* with Landmarks as an independent cross-check)
+class RoutePlanner {
+    static final long INF = Long.MAX_VALUE / 4;
+
+    TransportGraph graph;
+    ContractionHierarchy fastestHierarchy;
+    ContractionHierarchy cheapestHierarchy;
+    long lastCost;
+
+    int[] landmarks;
+    long[][] fastestFromLandmark;  // [landmark][node] shortest minutes
+    long[][] cheapestFromLandmark; // [landmark][node] cheapest cents
+
+    // Reused between A* queries, so a query allocates nothing big
+    long[] dist;
+    int[] seen;      // seen[v] == query means dist[v] is valid for this query
+    long[] estimate; // The landmark bound is computed once per node per query and cached here
+    int[] estimated;
+    int query;
+    MinHeap heap = new MinHeap();
+
+    RoutePlanner(TransportGraph graph, int landmarkCount) {
+        this.graph = graph;
+        int n = graph.nodeCount;
+        dist = new long[n];
+        seen = new int[n];
+        estimate = new long[n];
+        estimated = new int[n];
+
+        // The two hierarchies don't share anything but the read-only graph, so build them side by side
+        CompletableFuture<ContractionHierarchy> cheapest = CompletableFuture.supplyAsync(() -> new ContractionHierarchy(graph, false));
+        fastestHierarchy = new ContractionHierarchy(graph, true);
+        cheapestHierarchy = cheapest.join();
+
+        // Precompute: pick landmarks far apart (each one is the farthest node from the previous ones)
+        landmarks = new int[landmarkCount];
+        fastestFromLandmark = new long[landmarkCount][];
+        cheapestFromLandmark = new long[landmarkCount][];
+        long[] nearest = new long[n];
+        Arrays.fill(nearest, INF);
+        int next = 0;
+        for (int i = 0; i < landmarkCount; i++) {
+            landmarks[i] = next;
+            fastestFromLandmark[i] = fullDijkstra(next, true);
+            cheapestFromLandmark[i] = fullDijkstra(next, false);
+            long best = -1;
+            for (int v = 0; v < n; v++) {
+                nearest[v] = Math.min(nearest[v], fastestFromLandmark[i][v]);
+                if (nearest[v] < INF && nearest[v] > best) {
+                    best = nearest[v];
+                    next = v;
+                }
+            }
+        }
+    }
+
+    // Public query: returns the route as a list of node ids, empty if there is none
+    List<Integer> route(int origin, int destination, boolean fastest) {
+        ContractionHierarchy hierarchy = fastest ? fastestHierarchy : cheapestHierarchy;
+        lastCost = hierarchy.distance(origin, destination);
+        return hierarchy.lastRoute(origin);
+    }
+
+    // Which modes the route uses, leg by leg (consecutive legs of the same mode are merged)
+    List<String> legModes(List<Integer> path, boolean fastest) {
+        String[] names = { "ROAD", "AIR", "OCEAN", "TRANSFER" };
+        List<String> legs = new ArrayList<>();
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int from = path.get(i);
+            int to = path.get(i + 1);
+            int bestEdge = -1;
+            for (int e = graph.firstEdge[from]; e < graph.firstEdge[from + 1]; e++) {
+                if (graph.target[e] == to && (bestEdge == -1 || graph.weight(e, fastest) < graph.weight(bestEdge, fastest))) {
+                    bestEdge = e;
+                }
+            }
+            String leg = names[graph.mode[bestEdge]];
+            if (legs.isEmpty() || !legs.get(legs.size() - 1).equals(leg)) {
+                legs.add(leg);
+            }
+        }
+        return legs;
+    }
+
+    long[] fullDijkstra(int source, boolean fastest) {
+        search(source, -1, fastest, false);
+        long[] copy = new long[graph.nodeCount];
+        for (int v = 0; v < graph.nodeCount; v++) {
+            copy[v] = seen[v] == query ? dist[v] : INF;
+        }
+        return copy;
+    }
+
+    // The Landmark lower bound: |d(L, t) - d(L, v)| can never be more than the real distance from v to t
+    long lowerBound(int v, int destination, boolean fastest) {
+        if (estimated[v] == query) {
+            return estimate[v];
+        }
+        long[][] table = fastest ? fastestFromLandmark : cheapestFromLandmark;
+        long best = 0;
+        for (long[] fromL : table) {
+            if (fromL[v] < INF && fromL[destination] < INF) {
+                best = Math.max(best, Math.abs(fromL[destination] - fromL[v]));
+            }
+        }
+        estimated[v] = query;
+        estimate[v] = best;
+        return best;
+    }
+
+    // A* cost only (used to double-check the hierarchy)
+    long aStarCost(int origin, int destination, boolean fastest) {
+        return search(origin, destination, fastest, true);
+    }
+
+    // Core search. destination == -1 means "visit everything" (plain Dijkstra, used for the precompute)
+    long search(int source, int destination, boolean fastest, boolean useLandmarks) {
+        query++;
+        heap.clear();
+        dist[source] = 0;
+        seen[source] = query;
+        heap.push(useLandmarks ? lowerBound(source, destination, fastest) : 0, source);
+
+        while (!heap.isEmpty()) {
+            long key = heap.topKey();
+            int v = heap.pop();
+            long h = useLandmarks ? lowerBound(v, destination, fastest) : 0;
+            if (key > dist[v] + h) {
+                continue; // Old, outdated entry (we don't do decrease-key, we just skip stale ones)
+            }
+            if (v == destination) {
+                return dist[v];
+            }
+            for (int e = graph.firstEdge[v]; e < graph.firstEdge[v + 1]; e++) {
+                int w = graph.target[e];
+                long candidate = dist[v] + graph.weight(e, fastest);
+                if (seen[w] != query || candidate < dist[w]) {
+                    seen[w] = query;
+                    dist[w] = candidate;
+                    heap.push(candidate + (useLandmarks ? lowerBound(w, destination, fastest) : 0), w);
+                }
+            }
+        }
+        return destination == -1 ? 0 : INF;
+    }
+}
+
+// 5. THE STRATEGY (Plugs into the same Shipment.setStrategy as AirStrategy and LandStrategy)
+interface DeliveryStrategy {
+    void calculate();
+}
+
+class MultiModalStrategy implements DeliveryStrategy {
+    RoutePlanner planner;
+    int origin;
+    int destination;
+    boolean fastest; // true = fastest, false = cheapest
+
+    public void calculate() {
+        List<Integer> route = planner.route(origin, destination, fastest);
+        if (route.isEmpty()) {
+            System.out.println("Logic: No route from " + origin + " to " + destination);
+            return;
+        }
+        System.out.println("Logic: " + (fastest ? "Fastest " : "Cheapest ") + "route " + route
+            + " by " + String.join(" -> ", planner.legModes(route, fastest))
+            + " (" + planner.lastCost + (fastest ? " minutes)" : " cents)"));
+    }
+}
+
+// 6. THE EXECUTION (Small example + benchmark on a million-edge network)
+public class Main {
+    static int edges;
+    static int[] from = new int[1_100_000];
+    static int[] to = new int[1_100_000];
+    static int[] minutes = new int[1_100_000];
+    static int[] cents = new int[1_100_000];
+    static byte[] mode = new byte[1_100_000];
+
+    static void edge(int a, int b, int min, int cost, byte m) {
+        from[edges] = a;
+        to[edges] = b;
+        minutes[edges] = min;
+        cents[edges] = cost;
+        mode[edges++] = m;
+    }
+
+    static void roadEdge(int a, int b, boolean highway, Random random) {
+        if (highway) {
+            edge(a, b, 2 + random.nextInt(2), 60 + random.nextInt(20), TransportGraph.ROAD);
+        } else {
+            edge(a, b, 5 + random.nextInt(10), 100 + random.nextInt(100), TransportGraph.ROAD);
+        }
+    }
+
+    public static void main(String[] args) {
+        // Tiny network: 0 = Warehouse, 1 = Road hub, 2 = Airport, 3 = Sea port, 4 = Destination port, 5 = Customer
+        TransportGraph tiny = TransportGraph.build(6,
+            new int[] { 0, 1, 1, 2, 3, 4, 2 },
+            new int[] { 1, 2, 3, 5, 4, 5, 4 },
+            new int[] { 60, 30, 45, 300, 7200, 120, 900 },
+            new int[] { 2000, 500, 500, 90000, 15000, 3000, 40000 },
+            new byte[] { TransportGraph.ROAD, TransportGraph.TRANSFER, TransportGraph.TRANSFER, TransportGraph.AIR,
+                TransportGraph.OCEAN, TransportGraph.ROAD, TransportGraph.AIR });
+        RoutePlanner small = new RoutePlanner(tiny, 2);
+
+        Shipment freight = new Shipment();
+        MultiModalStrategy strategy = new MultiModalStrategy();
+        strategy.planner = small;
+        strategy.origin = 0;
+        strategy.destination = 5;
+
+        strategy.fastest = true;
+        freight.setStrategy(strategy);
+        freight.estimate();  // Truck -> Air
+
+        strategy.fastest = false;
+        freight.estimate();  // Truck -> Ocean -> Truck
+
+        // Benchmark network (~1M stored edges):
+        // -- a 500 x 500 road grid where every 10th row and column is a highway (faster and cheaper per km),
+        // -- 300 airports and 150 sea ports, each its OWN node, joined to one road junction by a TRANSFER edge,
+        // -- flights only between airports, sea lanes only between ports.
+        int side = 500;
+        int roadNodes = side * side;
+        int airports = 300;
+        int ports = 150;
+        int n = roadNodes + airports + ports;
+        Random random = new Random(1);
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int v = r * side + c;
+                if (c + 1 < side) roadEdge(v, v + 1, r % 10 == 0, random);
+                if (r + 1 < side) roadEdge(v, v + side, c % 10 == 0, random);
+            }
+        }
+        for (int a = 0; a < airports; a++) {
+            edge(roadNodes + a, random.nextInt(roadNodes), 90, 3_000, TransportGraph.TRANSFER);      // Check-in / customs
+            for (int k = 0; k < 10; k++) {
+                edge(roadNodes + a, roadNodes + random.nextInt(airports), 120 + random.nextInt(280),
+                    50_000 + random.nextInt(50_000), TransportGraph.AIR);
+            }
+        }
+        for (int p = 0; p < ports; p++) {
+            int port = roadNodes + airports + p;
+            edge(port, random.nextInt(roadNodes), 600, 2_000, TransportGraph.TRANSFER);             // Loading at the dock
+            for (int k = 0; k < 6; k++) {
+                edge(port, roadNodes + airports + random.nextInt(ports), 2_000 + random.nextInt(2_000),
+                    5_000 + random.nextInt(5_000), TransportGraph.OCEAN);
+            }
+        }
+        TransportGraph big = TransportGraph.build(n, Arrays.copyOf(from, edges), Arrays.copyOf(to, edges),
+            Arrays.copyOf(minutes, edges), Arrays.copyOf(cents, edges), Arrays.copyOf(mode, edges));
+
+        long precomputeStart = System.nanoTime();
+        RoutePlanner planner = new RoutePlanner(big, 16);
+        System.out.println("Hierarchies + landmarks precomputed in " + (System.nanoTime() - precomputeStart) / 1_000_000 + " ms");
+
+        int[] origins = new int[10_000];
+        int[] destinations = new int[10_000];
+        for (int i = 0; i < origins.length; i++) {
+            origins[i] = random.nextInt(roadNodes);
+            destinations[i] = random.nextInt(roadNodes);
+        }
+
+        // Cross-check: the hierarchy must agree with A* (and with the cost of the route it returns)
+        int wrong = 0;
+        for (int i = 0; i < 200; i++) {
+            boolean fastest = i % 2 == 0;
+            List<Integer> route = planner.route(origins[i], destinations[i], fastest);
+            long walked = 0;
+            for (int k = 0; k + 1 < route.size(); k++) {
+                walked += edgeWeight(big, route.get(k), route.get(k + 1), fastest);
+            }
+            if (planner.lastCost != planner.aStarCost(origins[i], destinations[i], fastest) || walked != planner.lastCost) {
+                wrong++;
+            }
+        }
+        System.out.println("Routes that disagree with A*: " + wrong + " of 200");
+
+        // Timed: CH query + unpacking the full route
+        int multiModal = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < origins.length; i++) {
+            List<Integer> route = planner.route(origins[i], destinations[i], i % 2 == 0);
+            if (route.get(route.size() - 1) >= roadNodes || touchesHub(route, roadNodes)) {
+                multiModal++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Average query: " + (elapsed / origins.length / 1_000) + " microseconds over "
+            + big.target.length + " edges, " + multiModal + " of " + origins.length + " routes used air or ocean");
+    }
+
+    static boolean touchesHub(List<Integer> route, int firstHub) {
+        for (int v : route) {
+            if (v >= firstHub) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int edgeWeight(TransportGraph g, int a, int b, boolean fastest) {
+        int best = Integer.MAX_VALUE;
+        for (int e = g.firstEdge[a]; e < g.firstEdge[a + 1]; e++) {
+            if (g.target[e] == b) {
+                best = Math.min(best, g.weight(e, fastest));
+            }
+        }
+        return best;
+    }
+}
+// Why this helps: Shipment still only knows "I have a Strategy". The hard work (graph, hierarchy, landmarks)
+// lives in its own classes, and new modes (Rail) are just new edges, not new code.
+
+Fast Startup with a Precomputed Registry :
+The Concept :
+// Our service starts MANY short-lived workers. Each one repeats the same wiring in main():
+// create the ShipmentFactory, link the Handler chain with setNext, subscribe the Observers, pick the DeliveryStrategy.
+// Writing this by hand in every main() is messy. The usual "fix" (scan the classpath, read annotations,
+// call Class.forName + newInstance) makes it even slower, because reflection and scanning cost time at EVERY start.
+
+// The Precomputed way:
+// 1. Declare the wiring ONCE in a small config file (what goes where, no code).
+// 2. At BUILD time, a Compiler reads the config, checks every name, and writes a tiny binary Registry
+//    (just numbers and strings, no Java serialization, which also uses reflection).
+// 3. At START time, the worker reads the Registry and builds objects with plain "new" through a Catalog switch.
+//    No reflection, no scanning, no parsing of text.
+// 4. AppCDS (Application Class Data Sharing): The JVM can save the already-loaded classes into an archive file
+//    and map it straight into memory on the next launch, so class loading is mostly skipped too.
+
+// The Config file (logistics.conf), one line per component. Blank lines and lines starting with # are skipped.
+// # Which class the Factory builds for each mode
+// factory  AIR   AirShipment
+// factory  OCEAN OceanShipment
+// factory  LAND  LandShipment
+// # The Handler chain, in order
+// chain    WeightCheck
+// chain    SecurityCheck
+// # Screening rules for SecurityCheck: category, then the term (may be several words)
+// rule     EXPLOSIVES dynamite
+// rule     HAZMAT     lithium battery
+// observer EmailNotifier ops@logistics.com
+// observer SMSNotifier
+// strategy AIR  AirStrategy
+// strategy LAND LandStrategy
+
+// 1. THE CATALOG (Every component we know, with a fixed number. Plain "new", no reflection)
+class ComponentCatalog {
+    static final int KIND_FACTORY = 0, KIND_CHAIN = 1, KIND_OBSERVER = 2, KIND_STRATEGY = 3, KIND_RULE = 4;
+    static final String[] KIND_NAMES = { "factory", "chain", "observer", "strategy", "rule" };
+    static final String WORKER_MODE = "AIR"; // The worker's first shipment uses this mode, so it must be configured
+
+    // Three lists that line up: the name, which kind of line it may appear on, and whether it needs an argument
+    static final String[] NAMES = {
+        "AirShipment", "OceanShipment", "LandShipment",
+        "WeightCheck", "SecurityCheck",
+        "EmailNotifier", "SMSNotifier",
+        "AirStrategy", "LandStrategy"
+    };
+    static final int[] KINDS = {
+        KIND_FACTORY, KIND_FACTORY, KIND_FACTORY,
+        KIND_CHAIN, KIND_CHAIN,
+        KIND_OBSERVER, KIND_OBSERVER,
+        KIND_STRATEGY, KIND_STRATEGY
+    };
+    static final boolean[] NEEDS_ARGUMENT = {
+        false, false, false,
+        false, false,
+        true, false,
+        false, false
+    };
+
+    static int idOf(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown component in config: " + name);
+    }
+
+    static Object create(int id, String argument, Registry registry) {
+        switch (id) {
+            case 0: return new AirShipment();
+            case 1: return new OceanShipment();
+            case 2: return new LandShipment();
+            case 3: return new WeightCheck();
+            case 4: SecurityCheck security = new SecurityCheck(); security.engine = registry.screening; return security;
+            case 5: EmailNotifier email = new EmailNotifier(); email.email = argument; return email;
+            case 6: return new SMSNotifier();
+            case 7: return new AirStrategy();
+            case 8: return new LandStrategy();
+            default: throw new IllegalArgumentException("Unknown component id: " + id);
+        }
+    }
+}
+
+// 2. THE BUILD-TIME COMPILER (Runs once during the build, not in the workers)
+// Every mistake a worker could hit is caught HERE: unknown names, the wrong kind of component, missing or extra
+// arguments, the same mode configured twice, and anything the worker needs that is missing from the config.
+class RegistryCompiler {
+    public static void main(String[] args) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(args[0]));
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        Set<String> factoryModes = new HashSet<>();
+        Set<String> strategyModes = new HashSet<>();
+        int chainLength = 0;
+        int count = 0;
+        for (int number = 1; number <= lines.size(); number++) {
+            String line = lines.get(number - 1).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            String where = "Line " + number + " (" + line + "): ";
+            if (parts[0].equals("factory")) {
+                expectParts(parts, 3, 3, where);
+                unique(factoryModes, parts[1], where);
+                write(out, ComponentCatalog.KIND_FACTORY, parts[1], component(parts[2], ComponentCatalog.KIND_FACTORY, null, where), "");
+            } else if (parts[0].equals("chain")) {
+                expectParts(parts, 2, 2, where);
+                chainLength++;
+                write(out, ComponentCatalog.KIND_CHAIN, "", component(parts[1], ComponentCatalog.KIND_CHAIN, null, where), "");
+            } else if (parts[0].equals("observer")) {
+                expectParts(parts, 2, 3, where);
+                String argument = parts.length == 3 ? parts[2] : null;
+                write(out, ComponentCatalog.KIND_OBSERVER, "", component(parts[1], ComponentCatalog.KIND_OBSERVER, argument, where),
+                    argument == null ? "" : argument);
+            } else if (parts[0].equals("strategy")) {
+                expectParts(parts, 3, 3, where);
+                unique(strategyModes, parts[1], where);
+                write(out, ComponentCatalog.KIND_STRATEGY, parts[1], component(parts[2], ComponentCatalog.KIND_STRATEGY, null, where), "");
+            } else if (parts[0].equals("rule")) {
+                expectParts(parts, 3, Integer.MAX_VALUE, where);
+                String term = String.join(" ", Arrays.copyOfRange(parts, 2, parts.length));
+                write(out, ComponentCatalog.KIND_RULE, term, -1, parts[1]);
+            } else {
+                throw new IllegalArgumentException(where + "unknown line type " + parts[0]); // Fail the BUILD, not the worker
+            }
+            count++;
+        }
+
+        // What the worker uses on its way to the first shipment must exist
+        if (!factoryModes.contains(ComponentCatalog.WORKER_MODE)) {
+            throw new IllegalArgumentException("Config has no 'factory " + ComponentCatalog.WORKER_MODE + " ...' line");
+        }
+        if (!strategyModes.contains(ComponentCatalog.WORKER_MODE)) {
+            throw new IllegalArgumentException("Config has no 'strategy " + ComponentCatalog.WORKER_MODE + " ...' line");
+        }
+        if (chainLength == 0) {
+            throw new IllegalArgumentException("Config has no 'chain' lines, the worker needs at least one check");
+        }
+        out.flush();
+        try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1])))) {
+            file.writeInt(count);
+            records.writeTo(file);
+        }
+    }
+
+    // A second line for the same mode would silently replace the first one in the worker's map
+    static void unique(Set<String> seen, String mode, String where) {
+        if (!seen.add(mode)) {
+            throw new IllegalArgumentException(where + "mode " + mode + " is already configured");
+        }
+    }
+
+    static void expectParts(String[] parts, int min, int max, String where) {
+        if (parts.length < min || parts.length > max) {
+            throw new IllegalArgumentException(where + "wrong number of words");
+        }
+    }
+
+    // The name must exist, belong on this kind of line, and have an argument exactly when it needs one
+    static int component(String name, int kind, String argument, String where) {
+        int id;
+        try {
+            id = ComponentCatalog.idOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(where + e.getMessage());
+        }
+        if (ComponentCatalog.KINDS[id] != kind) {
+            throw new IllegalArgumentException(where + name + " belongs on a " + ComponentCatalog.KIND_NAMES[ComponentCatalog.KINDS[id]]
+                + " line, not a " + ComponentCatalog.KIND_NAMES[kind] + " line");
+        }
+        if (ComponentCatalog.NEEDS_ARGUMENT[id] != (argument != null)) {
+            throw new IllegalArgumentException(where + name + (ComponentCatalog.NEEDS_ARGUMENT[id] ? " needs an argument" : " takes no argument"));
+        }
+        return id;
+    }
+
+    static void write(DataOutputStream out, int kind, String key, int componentId, String argument) throws IOException {
+        out.writeByte(kind);
+        out.writeUTF(key);
+        out.writeShort(componentId);
+        out.writeUTF(argument);
+    }
+}
+
+// 3. THE REGISTRY (What a worker gets at startup, already wired)
+class Registry {
+    Map<String, Integer> factoryTable = new HashMap<>();     // "AIR" -> component id
+    Handler firstCheck;
+    List<Observer> observers = new ArrayList<>();
+    Map<String, DeliveryStrategy> strategies = new HashMap<>();
+    ScreeningEngine screening = new ScreeningEngine();     // Shared by every SecurityCheck in the chain
+
+    static Registry load(InputStream raw) throws IOException {
+        Registry registry = new Registry();
+        Handler lastCheck = null;
+        List<ScreeningRule> rules = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(raw));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int kind = in.readByte();
+            String key = in.readUTF();
+            int id = in.readShort();
+            String argument = in.readUTF();
+            // The casts below are safe: the compiler already checked every component against its line type
+            if (kind == ComponentCatalog.KIND_FACTORY) {
+                registry.factoryTable.put(key, id);
+            } else if (kind == ComponentCatalog.KIND_CHAIN) {
+                Handler check = (Handler) ComponentCatalog.create(id, argument, registry);
+                if (lastCheck == null) {
+                    registry.firstCheck = check;
+                } else {
+                    lastCheck.setNext(check); // The same linking we used to do by hand in main()
+                }
+                lastCheck = check;
+            } else if (kind == ComponentCatalog.KIND_OBSERVER) {
+                registry.observers.add((Observer) ComponentCatalog.create(id, argument, registry));
+            } else if (kind == ComponentCatalog.KIND_STRATEGY) {
+                registry.strategies.put(key, (DeliveryStrategy) ComponentCatalog.create(id, argument, registry));
+            } else {
+                ScreeningRule rule = new ScreeningRule();
+                rule.term = key;
+                rule.category = argument;
+                rules.add(rule);
+            }
+        }
+        registry.screening.reload(rules);
+        return registry;
+    }
+
+    // The Factory, now a table lookup instead of an if-else ladder
+    Shipment getShipment(String mode) {
+        Integer id = factoryTable.get(mode);
+        return id == null ? null : (Shipment) ComponentCatalog.create(id, "", this);
+    }
+}
+
+// 4. THE WORKER (Startup = read the Registry, then process the first shipment)
+public class Main {
+    public static void main(String[] args) throws IOException {
+        Registry registry;
+        try (InputStream in = Main.class.getResourceAsStream("/registry.bin")) {
+            registry = Registry.load(in);
+        }
+
+        Shipment first = registry.getShipment(ComponentCatalog.WORKER_MODE);
+        first.showLocation();
+        registry.firstCheck.check("Apples");
+        registry.strategies.get(ComponentCatalog.WORKER_MODE).calculate();
+        for (Observer worker : registry.observers) {
+            worker.update("PROCESSED");
+        }
+        System.out.println("FIRST-SHIPMENT-PROCESSED"); // The benchmark waits for this line
+    }
+}
+
+// 5. PACKAGING WITH AppCDS (Shell commands, run during the build)
+// javac -d classes *.java
+// java -cp classes RegistryCompiler logistics.conf classes/registry.bin          # Build-time registry
+// jar --create --file worker.jar --main-class Main -C classes .
+// java -XX:ArchiveClassesAtExit=worker.jsa -jar worker.jar                        # Training run, writes the archive
+// java -XX:SharedArchiveFile=worker.jsa -Xshare:auto -jar worker.jar             # Every real worker launch
+
+// 6. THE STARTUP BENCHMARK (Launch a fresh JVM, stop the clock at the first processed shipment)
+class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        String[][] variants = {
+            { "java", "-jar", "worker.jar" },
+            { "java", "-XX:SharedArchiveFile=worker.jsa", "-Xshare:auto", "-jar", "worker.jar" }
+        };
+        int runs = 20;
+        for (String[] command : variants) {
+            long total = 0;
+            int succeeded = 0;
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                long elapsed = -1;
+                Process worker = new ProcessBuilder(command).redirectErrorStream(true).start();
+                try (BufferedReader out = new BufferedReader(new InputStreamReader(worker.getInputStream()))) {
+                    String line;
+                    while ((line = out.readLine()) != null) {
+                        if (elapsed < 0 && line.equals("FIRST-SHIPMENT-PROCESSED")) {
+                            elapsed = System.nanoTime() - start;
+                        }
+                    }
+                }
+                // A crashed worker must not look like a fast one: it only counts if it got there AND exited cleanly
+                if (worker.waitFor() == 0 && elapsed >= 0) {
+                    total += elapsed;
+                    succeeded++;
+                }
+            }
+            if (succeeded == 0) {
+                System.out.println(String.join(" ", command) + " -> FAILED, no run reached the first shipment");
+            } else {
+                System.out.println(String.join(" ", command) + " -> average " + (total / succeeded / 1_000_000)
+                    + " ms to first shipment (" + succeeded + " of " + runs + " runs succeeded)");
+            }
+        }
+    }
+}
+// Why this helps: All the "thinking" about wiring happens once at build time. Each worker just reads
+// a few bytes and calls "new", and with AppCDS even loading the classes is mostly free.